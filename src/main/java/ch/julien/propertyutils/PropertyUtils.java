@@ -13,15 +13,22 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.objenesis.Objenesis;
 import org.objenesis.ObjenesisStd;
 
+import net.sf.cglib.beans.BulkBean;
+import net.sf.cglib.beans.BulkBeanException;
 import net.sf.cglib.core.DefaultNamingPolicy;
 import net.sf.cglib.core.NamingPolicy;
 import net.sf.cglib.core.Predicate;
@@ -32,12 +39,18 @@ import net.sf.cglib.proxy.Factory;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 import net.sf.cglib.proxy.NoOp;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
 
 public class PropertyUtils {
-	private static final Map<InvocationSequence, Object> PLACEHOLDER_BY_INVOCATION = new WeakHashMap<InvocationSequence, Object>();
+	// The argument bound to a placeholder references its invocation sequence, so placeholders are held weakly to let both be collected
+	private static final Map<InvocationSequence, WeakReference<Object>> PLACEHOLDER_BY_INVOCATION = new WeakHashMap<InvocationSequence, WeakReference<Object>>();
 	private static final AtomicInteger PLACEHOLDER_COUNTER = new AtomicInteger(Integer.MIN_VALUE);
 	private static final Map<Object, Argument<?>> ARGUMENTS_BY_PLACEHOLDER = new WeakHashMap<Object, Argument<?>>();
 
+	// Primitive placeholders are unboxed and boxed again before reaching property(): the last one of each thread is kept alive in between, until property() finds it
+	private static final ThreadLocal<Object> LAST_PRIMITIVE_PLACEHOLDER = new ThreadLocal<Object>();
+
 	private static final ThreadLocal<LimitedValuesArgumentHolder> LIMITED_VALUE_ARGUMENTS = new ThreadLocal<LimitedValuesArgumentHolder>() {
 		protected LimitedValuesArgumentHolder initialValue() {
 			return new LimitedValuesArgumentHolder();
@@ -57,25 +70,68 @@ public class PropertyUtils {
 		return actualArgument;
 	}
 
+	/**
+	 * Creates a binder populating beans of the given class from rows whose columns are bound, in order, to the given properties
+	 * @param clazz The class of the beans to be populated
+	 * @param propertyName The JavaBean compatible name of the property bound to the first column, nested ones separated by dots as in "bestFriend.name"
+	 * @param propertyNames The names of the properties bound to the following columns
+	 * @return The binder for the given schema
+	 */
+	public static <T> Binder<T> binder(Class<T> clazz, String propertyName, String... propertyNames) {
+		String[] allPropertyNames = new String[propertyNames.length + 1];
+		allPropertyNames[0] = propertyName;
+		System.arraycopy(propertyNames, 0, allPropertyNames, 1, propertyNames.length);
+		return new Binder<T>(clazz, allPropertyNames);
+	}
+
+	/**
+	 * Creates a binder populating beans of the given class from rows whose columns are bound, in order, to the given arguments
+	 * @param clazz The class of the beans to be populated
+	 * @param argument The argument bound to the first column, for example <code>property(on(Person.class).getBestFriend().getName())</code>
+	 * @param arguments The arguments bound to the following columns
+	 * @return The binder for the given schema
+	 */
+	public static <T> Binder<T> binder(Class<T> clazz, Argument<?> argument, Argument<?>... arguments) {
+		String[] propertyNames = new String[arguments.length + 1];
+		for (int i = 0; i < propertyNames.length; i++) {
+			Argument<?> columnArgument = i == 0 ? argument : arguments[i - 1];
+			if (!columnArgument.invocationSequence.getRootInvokedClass().isAssignableFrom(clazz))
+				throw new IllegalArgumentException("The argument " + columnArgument + " is not defined on " + clazz.getName());
+			propertyNames[i] = columnArgument.getInkvokedPropertyName();
+		}
+		return new Binder<T>(clazz, propertyNames);
+	}
+
 	private static <T> Argument<T> placeholderToArgument(T placeholder) {
 		if (placeholder instanceof Argument) return (Argument<T>)placeholder;
-		return (Argument<T>)(isLimitedValues(placeholder) ? LIMITED_VALUE_ARGUMENTS.get().getArgument(placeholder) : ARGUMENTS_BY_PLACEHOLDER.get(placeholder));
+		if (isLimitedValues(placeholder)) return (Argument<T>)LIMITED_VALUE_ARGUMENTS.get().getArgument(placeholder);
+
+		Argument<T> argument;
+		// WeakHashMap.get() expunges stale entries, so it needs the same lock as on()
+		synchronized (PropertyUtils.class) {
+			argument = (Argument<T>)ARGUMENTS_BY_PLACEHOLDER.get(placeholder);
+		}
+		Object lastPrimitivePlaceholder = LAST_PRIMITIVE_PLACEHOLDER.get();
+		if (argument != null && lastPrimitivePlaceholder != null && lastPrimitivePlaceholder.equals(placeholder)) LAST_PRIMITIVE_PLACEHOLDER.remove();
+		return argument;
 	}
 
 	static synchronized <T> T on(Class<T> clazz, InvocationSequence invocationSequence) {
-		T placeholder = (T) PLACEHOLDER_BY_INVOCATION.get(invocationSequence);
+		WeakReference<Object> placeholderReference = PLACEHOLDER_BY_INVOCATION.get(invocationSequence);
+		T placeholder = placeholderReference == null ? null : (T) placeholderReference.get();
 
 		if (placeholder == null) {
 			placeholder = registerNewArgument(clazz, invocationSequence);
 		}
 
 		else if (isLimitedValues(placeholder)) LIMITED_VALUE_ARGUMENTS.get().setArgument(placeholder, new Argument<T>(invocationSequence));
+		if (clazz.isPrimitive() && !isLimitedValues(clazz)) LAST_PRIMITIVE_PLACEHOLDER.set(placeholder);
 		return placeholder;
 	}
 
 	private static <T> T registerNewArgument(Class<T> clazz, InvocationSequence invocationSequence) {
 		T placeholder = (T)createPlaceholder(clazz, invocationSequence);
-		PLACEHOLDER_BY_INVOCATION.put(invocationSequence, placeholder);
+		PLACEHOLDER_BY_INVOCATION.put(invocationSequence, new WeakReference<Object>(placeholder));
 		bindArgument(placeholder, new Argument<T>(invocationSequence));
 		return placeholder;
 	}
@@ -134,11 +190,17 @@ public class PropertyUtils {
 		if (isLong(clazz)) return placeholderId.longValue();
 		if (isDouble(clazz)) return placeholderId.doubleValue();
 		if (isFloat(clazz)) return placeholderId.floatValue();
-		if (isCharacter(clazz)) return Character.forDigit(placeholderId % Character.MAX_RADIX, Character.MAX_RADIX);
-		if (isShort(clazz)) return placeholderId.shortValue();
+		if (isCharacter(clazz)) return (char)uncachedValue(placeholderId, Character.MAX_VALUE);
+		if (isShort(clazz)) return (short)uncachedValue(placeholderId, Short.MAX_VALUE);
+		// Every byte is a cached instance: like booleans and enums, byte placeholders are limited to 256 values that are never collected
 		return placeholderId.byteValue();
 	}
 
+	// A value between 128 and max, out of the range boxed by valueOf() into cached instances that would keep their argument bound forever
+	private static int uncachedValue(Integer placeholderId, int max) {
+		return 128 + (int)(((long)placeholderId - Integer.MIN_VALUE) % (max - 127));
+	}
+
 	private static boolean isInt(Class<?> clazz) {
 		return clazz == Integer.TYPE || clazz == Integer.class;
 	}
@@ -380,22 +442,34 @@ public class PropertyUtils {
 
 		private final Class<?> proxiedClass;
 
-		private final WeakReference<InvocationSequence> invocationSequence;
+		// Held strongly since the proxy may already be unreachable, and its registry entries collected, while one of its methods is being intercepted
+		private final InvocationSequence invocationSequence;
+
+		// The placeholders of primitive properties are unboxed by the caller, so the last one returned by each method is kept alive as long as this proxy
+		private final Map<Method, Object> primitivePlaceholders = new HashMap<Method, Object>();
 
 		ProxyArgument(Class<?> proxiedClass, InvocationSequence invocationSequence) {
 			this.proxiedClass = proxiedClass;
-			this.invocationSequence = new WeakReference<InvocationSequence>(invocationSequence);
+			this.invocationSequence = invocationSequence;
 		}
 
 		/**
 		 * {@inheritDoc}
 		 */
 		public Object invoke(Object proxy, Method method, Object[] args) {
-			if (method.getName().equals("hashCode")) return invocationSequence.hashCode();
-			if (method.getName().equals("equals")) return invocationSequence.equals(args[0]);
+			if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+			if (method.getName().equals("equals")) return proxy == args[0];
+			// Invoked by the finalizer thread on collected proxies, it must not be registered as a new invocation
+			if (method.getName().equals("finalize")) return null;
 
 			// Adds this invocation to the current invocation sequence and creates a new proxy propagating the invocation sequence
-			return on(method.getReturnType(), new InvocationSequence(invocationSequence.get(), new Invocation(proxiedClass, method, args)));
+			Object placeholder = on(method.getReturnType(), new InvocationSequence(invocationSequence, new Invocation(proxiedClass, method, args)));
+			if (method.getReturnType().isPrimitive() && !isLimitedValues(method.getReturnType())) {
+				synchronized (primitivePlaceholders) {
+					primitivePlaceholders.put(method, placeholder);
+				}
+			}
+			return placeholder;
 		}
 	}
 
@@ -662,5 +736,344 @@ public class PropertyUtils {
 			else if (methodName.startsWith("is") && methodName.length() > 2) methodName = methodName.substring(2);
 			return methodName.substring(0, 1).toLowerCase(Locale.getDefault()) + methodName.substring(1);
 		}
+
+		/**
+		 * Returns the public getter of the given property
+		 * @param clazz The class to be introspected
+		 * @param propertyName The bean compliant name of the property
+		 * @return The getter of the property or null if the class doesn't define one
+		 */
+		public static Method getGetter(Class<?> clazz, String propertyName) {
+			for (Method method : clazz.getMethods()) {
+				if (method.getParameterTypes().length == 0 && method.getReturnType() != Void.TYPE && method.getDeclaringClass() != Object.class
+					&& (method.getName().startsWith("get") || method.getName().startsWith("is")) && propertyName.equals(getPropertyName(method))) return method;
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the public setter of the given property
+		 * @param clazz The class to be introspected
+		 * @param propertyName The bean compliant name of the property
+		 * @return The setter of the property or null if the class doesn't define one
+		 */
+		public static Method getSetter(Class<?> clazz, String propertyName) {
+			for (Method method : clazz.getMethods()) {
+				if (method.getParameterTypes().length == 1 && method.getName().startsWith("set") && propertyName.equals(getPropertyName(method))) return method;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Populates beans from rows of values, either <code>Object[]</code> holding one value per column or <code>Map</code> keyed by property names.
+	 * The schema is compiled once in a tree of generated setters, one BulkBean per bean type, so binding a row involves no reflection.
+	 * Values are narrowed to primitive properties by the generated code, e.g. a Long column can be bound to an int property,
+	 * while a null or missing value binds a primitive property to its default value, e.g. 0 or false.
+	 * Missing intermediate beans are created through their public no-args constructor. Instances are immutable and thread safe.
+	 */
+	public static final class Binder<T> {
+
+		private final Class<T> beanClass;
+		private final String[] propertyNames;
+		private final BindingNode root;
+
+		Binder(Class<T> beanClass, String[] propertyNames) {
+			this.beanClass = beanClass;
+			this.propertyNames = propertyNames;
+			root = new BindingNode(beanClass);
+			for (int i = 0; i < propertyNames.length; i++) {
+				root.add(propertyNames[i], propertyNames[i].split("\\."), 0, i);
+			}
+			root.compile(propertyNames.length);
+		}
+
+		/**
+		 * Creates a new bean and populates it with the given row
+		 * @param row The values of the row, one per column of the schema
+		 * @return The populated bean
+		 */
+		public T bind(Object[] row) {
+			return bindRow(null, row);
+		}
+
+		/**
+		 * Creates a new bean and populates it with the given row
+		 * @param row The values of the row keyed by property name, a missing property being bound to null or to the default value of a primitive
+		 * @return The populated bean
+		 */
+		public T bind(Map<String, ?> row) {
+			return bindRow(null, row);
+		}
+
+		/**
+		 * Populates the given bean with the given row
+		 * @param bean The bean to be populated
+		 * @param row The values of the row, one per column of the schema
+		 */
+		public void bind(T bean, Object[] row) {
+			bindRow(bean, row);
+		}
+
+		/**
+		 * Populates the given bean with the given row
+		 * @param bean The bean to be populated
+		 * @param row The values of the row keyed by property name, a missing property being bound to null or to the default value of a primitive
+		 */
+		public void bind(T bean, Map<String, ?> row) {
+			bindRow(bean, row);
+		}
+
+		/**
+		 * Populates the given array with the beans bound to the next rows of the given iterator, until either of them is exhausted.
+		 * The null elements of the array are replaced by new beans, the other ones are populated in place.
+		 * @param rows The rows to be bound, either <code>Object[]</code> or <code>Map</code>
+		 * @param beans The array to be populated
+		 * @return The number of bound rows
+		 */
+		public int bindAll(Iterator<?> rows, T[] beans) {
+			int count = 0;
+			for (; count < beans.length && rows.hasNext(); count++) {
+				beans[count] = bindRow(beans[count], rows.next());
+			}
+			return count;
+		}
+
+		/**
+		 * Populates the given array like {@link #bindAll(Iterator, Object[])}, binding the rows in one batch per available processor.
+		 * The rows are read from the iterator in the calling thread. If a batch fails or can't be submitted, the submitted ones are still awaited
+		 * before the first failure is rethrown.
+		 * @param rows The rows to be bound, either <code>Object[]</code> or <code>Map</code>
+		 * @param beans The array to be populated
+		 * @param executor The executor binding the batches
+		 * @return The number of bound rows
+		 */
+		public int bindAll(Iterator<?> rows, final T[] beans, ExecutorService executor) {
+			final Object[] bufferedRows = new Object[beans.length];
+			int count = 0;
+			for (; count < beans.length && rows.hasNext(); count++) {
+				bufferedRows[count] = rows.next();
+			}
+
+			int batches = Math.min(count, Runtime.getRuntime().availableProcessors());
+			List<Future<?>> futures = new ArrayList<Future<?>>(batches);
+			Throwable failure = null;
+			try {
+				for (int batch = 0; batch < batches; batch++) {
+					final int from = count * batch / batches;
+					final int to = count * (batch + 1) / batches;
+					futures.add(executor.submit(new Runnable() {
+						public void run() {
+							for (int i = from; i < to; i++) {
+								beans[i] = bindRow(beans[i], bufferedRows[i]);
+							}
+						}
+					}));
+				}
+			} catch (RuntimeException e) {
+				// e.g. RejectedExecutionException, the batches already submitted are still awaited below
+				failure = e;
+			}
+			for (Future<?> future : futures) {
+				Throwable batchFailure = await(future);
+				if (failure == null) failure = batchFailure;
+			}
+			if (failure != null) throw unwrap(failure);
+			return count;
+		}
+
+		private T bindRow(T bean, Object row) {
+			if (bean == null) bean = beanClass.cast(root.newInstance());
+			root.bind(bean, toColumns(row));
+			return bean;
+		}
+
+		private Object[] toColumns(Object row) {
+			if (row instanceof Object[]) {
+				Object[] columns = (Object[])row;
+				if (columns.length < propertyNames.length)
+					throw new IllegalArgumentException("The row has " + columns.length + " columns while " + propertyNames.length + " are bound");
+				return columns;
+			}
+			if (row instanceof Map) {
+				Object[] columns = new Object[propertyNames.length];
+				for (int i = 0; i < propertyNames.length; i++) {
+					columns[i] = ((Map<?, ?>)row).get(propertyNames[i]);
+				}
+				return columns;
+			}
+			throw new IllegalArgumentException("Unable to bind a row of type " + (row == null ? null : row.getClass().getName()));
+		}
+
+		private static Throwable await(Future<?> future) {
+			// The batch keeps writing into the array until it completes, so it is awaited even if this thread is interrupted
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						future.get();
+						return null;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException e) {
+						return e.getCause();
+					}
+				}
+			} finally {
+				if (interrupted) Thread.currentThread().interrupt();
+			}
+		}
+
+		private static RuntimeException unwrap(Throwable throwable) {
+			if (throwable instanceof Error) throw (Error)throwable;
+			return throwable instanceof RuntimeException ? (RuntimeException)throwable : new RuntimeException(throwable);
+		}
+
+		/**
+		 * The setters of a bean type: a BulkBean for its bound properties and one nested node for each intermediate bean
+		 */
+		private static final class BindingNode {
+			private static final Object[] NO_ARGS = new Object[0];
+
+			private final String path;
+			private final Class<?> type;
+			private final FastClass fastClass;
+			private final boolean instantiable;
+			private final FastMethod getter;
+			private final FastMethod setter;
+
+			private final List<Method> leafSetterMethods = new ArrayList<Method>();
+			private final List<String> leafNames = new ArrayList<String>();
+			private final List<Integer> leafColumnList = new ArrayList<Integer>();
+			private final Map<String, BindingNode> childrenByName = new LinkedHashMap<String, BindingNode>();
+
+			private BulkBean leafSetter;
+			private int[] leafColumns;
+			private Object[] leafDefaults;
+			private boolean rowAsLeafValues;
+			private BindingNode[] children;
+
+			BindingNode(Class<?> type) {
+				this(null, type, null, null);
+			}
+
+			private BindingNode(String path, Class<?> type, FastMethod getter, FastMethod setter) {
+				this.path = path;
+				this.type = type;
+				this.fastClass = FastClass.create(type);
+				this.instantiable = !Modifier.isAbstract(type.getModifiers()) && fastClass.getIndex(new Class[0]) >= 0;
+				this.getter = getter;
+				this.setter = setter;
+			}
+
+			void add(String path, String[] propertyNames, int depth, int column) {
+				String propertyName = propertyNames[depth];
+				Method setterMethod = IntrospectionUtil.getSetter(type, propertyName);
+				if (setterMethod == null) throw new IllegalArgumentException("Unable to bind " + path + ": " + type.getName() + " has no setter for " + propertyName);
+				boolean leaf = depth == propertyNames.length - 1;
+				if (leafSetterMethods.contains(setterMethod) || (leaf && childrenByName.containsKey(propertyName)))
+					throw new IllegalArgumentException("The property " + path + " is bound more than once");
+
+				if (leaf) {
+					leafSetterMethods.add(setterMethod);
+					leafNames.add(path);
+					leafColumnList.add(column);
+					return;
+				}
+
+				BindingNode child = childrenByName.get(propertyName);
+				if (child == null) {
+					Method getterMethod = IntrospectionUtil.getGetter(type, propertyName);
+					child = new BindingNode(this.path == null ? propertyName : this.path + "." + propertyName, setterMethod.getParameterTypes()[0],
+						getterMethod == null ? null : fastClass.getMethod(getterMethod), fastClass.getMethod(setterMethod));
+					childrenByName.put(propertyName, child);
+				}
+				child.add(path, propertyNames, depth + 1, column);
+			}
+
+			void compile(int width) {
+				int size = leafSetterMethods.size();
+				if (size > 0) {
+					String[] setterNames = new String[size];
+					Class<?>[] types = new Class<?>[size];
+					leafColumns = new int[size];
+					leafDefaults = new Object[size];
+					rowAsLeafValues = size == width;
+					for (int i = 0; i < size; i++) {
+						setterNames[i] = leafSetterMethods.get(i).getName();
+						types[i] = leafSetterMethods.get(i).getParameterTypes()[0];
+						leafColumns[i] = leafColumnList.get(i);
+						// BulkBean can't unbox null, so the default value of a primitive is bound instead
+						if (types[i].isPrimitive()) leafDefaults[i] = Array.get(Array.newInstance(types[i], 1), 0);
+						rowAsLeafValues &= leafColumns[i] == i;
+					}
+					leafSetter = BulkBean.create(type, new String[size], setterNames, types);
+				}
+
+				children = childrenByName.values().toArray(new BindingNode[childrenByName.size()]);
+				for (BindingNode child : children) {
+					// Without a getter the intermediate bean is always created, otherwise only when the getter returns null
+					if (child.getter == null && !child.instantiable) throw child.notInstantiable();
+					child.compile(width);
+				}
+			}
+
+			void bind(Object bean, Object[] row) {
+				if (leafSetter != null) {
+					try {
+						leafSetter.setPropertyValues(bean, leafValues(row));
+					} catch (BulkBeanException e) {
+						throw new IllegalArgumentException("Unable to bind the value " + row[leafColumns[e.getIndex()]] + " to " + leafNames.get(e.getIndex()), e.getCause());
+					}
+				}
+				for (BindingNode child : children) {
+					child.bind(child.getOrCreate(bean), row);
+				}
+			}
+
+			private Object[] leafValues(Object[] row) {
+				if (rowAsLeafValues && !hasMissingPrimitive(row)) return row;
+				Object[] values = new Object[leafColumns.length];
+				for (int i = 0; i < leafColumns.length; i++) {
+					Object value = row[leafColumns[i]];
+					values[i] = value == null ? leafDefaults[i] : value;
+				}
+				return values;
+			}
+
+			private boolean hasMissingPrimitive(Object[] row) {
+				for (int i = 0; i < leafColumns.length; i++) {
+					if (leafDefaults[i] != null && row[leafColumns[i]] == null) return true;
+				}
+				return false;
+			}
+
+			private Object getOrCreate(Object parent) {
+				try {
+					Object bean = getter == null ? null : getter.invoke(parent, NO_ARGS);
+					if (bean == null) {
+						bean = newInstance();
+						setter.invoke(parent, new Object[] { bean });
+					}
+					return bean;
+				} catch (InvocationTargetException e) {
+					throw unwrap(e.getTargetException());
+				}
+			}
+
+			Object newInstance() {
+				if (!instantiable) throw notInstantiable();
+				try {
+					return fastClass.newInstance();
+				} catch (InvocationTargetException e) {
+					throw unwrap(e.getTargetException());
+				}
+			}
+
+			private IllegalArgumentException notInstantiable() {
+				return new IllegalArgumentException("Unable to create " + (path == null ? "a bean" : path) + ": "
+					+ type.getName() + " is abstract or has no public no-args constructor");
+			}
+		}
 	}
 }
@@ -0,0 +1,327 @@
+package ch.julien.propertyutils;
+
+import static ch.julien.propertyutils.PropertyUtils.on;
+import static ch.julien.propertyutils.PropertyUtils.property;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Scalability and leak checks for the placeholder registry, run with <code>mvn test -Pstress</code>.
+ * The soak duration, the number of threads and the tolerated heap growth are read from the
+ * <code>stress.durationSeconds</code>, <code>stress.threads</code> and <code>stress.maxHeapGrowthMb</code> system properties.
+ */
+public class PropertyUtilsStressTest {
+	private static final int CAPTURES_PER_THREAD = 20000;
+	private static final int CHURNED_CLASS_LOADERS = 50;
+
+	private final long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("stress.durationSeconds", 60));
+	private final int threads = Integer.getInteger("stress.threads", 2 * Runtime.getRuntime().availableProcessors());
+	private final long maxHeapGrowth = Long.getLong("stress.maxHeapGrowthMb", 32) * 1024 * 1024;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void concurrentCapturesOfOverlappingAndDistinctPaths() throws Exception {
+		runConcurrently(new CaptureTask() {
+			public void capture(int thread, int i) {
+				// Overlapping: every thread captures the same path
+				assertThat(property(on(Person.class).getBestFriend().getName()).getInkvokedPropertyName()).isEqualTo("bestFriend.name");
+				// Distinct: the depth of the path depends on the thread
+				assertThat(property(deepFriend(thread % 8).getAge()).getInkvokedPropertyName()).isEqualTo(deepFriendPath(thread % 8) + "age");
+				assertThat(property(on(Person.class).getAddress().getCity()))
+					.isEqualTo(property(on(Person.class).getAddress().getCity()));
+			}
+		});
+	}
+
+	@Test
+	public void interleavedLimitedValuesCaptures() throws Exception {
+		runConcurrently(new CaptureTask() {
+			public void capture(int thread, int i) {
+				assertThat(property(on(Person.class).isMale()).getInkvokedPropertyName()).isEqualTo("male");
+				assertThat(property(on(Person.class).getGender()).getInkvokedPropertyName()).isEqualTo("gender");
+				assertThat(property(on(Person.class).getName()).getInkvokedPropertyName()).isEqualTo("name");
+				assertThat(property(on(Person.class).getBestFriend().isMale()).getInkvokedPropertyName()).isEqualTo("bestFriend.male");
+				assertThat(property(deepFriend((thread + i) % 8).getGender()).getInkvokedPropertyName()).isEqualTo(deepFriendPath((thread + i) % 8) + "gender");
+			}
+		});
+	}
+
+	@Test
+	public void churnedClassLoadersAreCollected() throws Exception {
+		List<WeakReference<Object>> references = new ArrayList<WeakReference<Object>>();
+		for (int i = 0; i < CHURNED_CLASS_LOADERS; i++) {
+			captureInNewClassLoader(references);
+		}
+
+		// Stale WeakHashMap entries are only expunged when the maps are accessed: the application keeps capturing on another thread
+		for (int i = 0; i < 50 && countAlive(references) > 0; i++) {
+			forceGc();
+			executor.submit(new Runnable() {
+				public void run() {
+					property(on(Person.class).getName());
+				}
+			}).get();
+		}
+		assertThat(countAlive(references)).as("proxies, placeholders and class loaders still reachable").isZero();
+	}
+
+	private static void captureInNewClassLoader(List<WeakReference<Object>> references) throws Exception {
+		ClassLoader classLoader = new ChildFirstClassLoader(ChurnBean.class.getName());
+		Class<?> beanClass = classLoader.loadClass(ChurnBean.class.getName());
+		assertThat(beanClass).isNotSameAs(ChurnBean.class);
+
+		Object proxy = on(beanClass);
+		Object placeholder = beanClass.getMethod("getValue").invoke(proxy);
+		assertThat(property(placeholder).getInkvokedPropertyName()).isEqualTo("value");
+		// Primitive placeholders reach property() unboxed and boxed again
+		assertThat(property(beanClass.getMethod("getCount").invoke(proxy)).getInkvokedPropertyName()).isEqualTo("count");
+		assertThat(property(beanClass.getMethod("getInitial").invoke(proxy)).getInkvokedPropertyName()).isEqualTo("initial");
+
+		references.add(new WeakReference<Object>(classLoader));
+		references.add(new WeakReference<Object>(proxy));
+		references.add(new WeakReference<Object>(placeholder));
+	}
+
+	@Test
+	public void soak() throws Exception {
+		final long deadline = System.currentTimeMillis() + durationMillis;
+		final CountDownLatch done = new CountDownLatch(threads);
+		final long[] captures = new long[threads];
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		forceGc();
+		long baselineHeap = usedHeap();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() {
+					try {
+						for (int i = 0; System.currentTimeMillis() < deadline; i++) {
+							property(deepFriend(i % 8).getName());
+							property(deepFriend(i % 8).isMale());
+							property(on(Person.class).getAddress().getCity());
+							captures[thread] += 3;
+						}
+						return null;
+					} finally {
+						done.countDown();
+					}
+				}
+			}));
+		}
+
+		long start = System.currentTimeMillis();
+		long lastCaptures = 0;
+		long lastSample = start;
+		while (!done.await(Math.min(5000, Math.max(1, durationMillis / 10)), TimeUnit.MILLISECONDS)) {
+			long now = System.currentTimeMillis();
+			long total = sum(captures);
+			System.out.printf("soak t=%ds captures/s=%d heap=%dkB%n",
+				(now - start) / 1000, (total - lastCaptures) * 1000 / Math.max(1, now - lastSample), usedHeap() / 1024);
+			lastCaptures = total;
+			lastSample = now;
+		}
+		for (Future<?> future : futures) future.get();
+
+		forceGc();
+		long heapGrowth = usedHeap() - baselineHeap;
+		System.out.printf("soak done captures=%d captures/s=%d heap growth=%dkB%n",
+			sum(captures), sum(captures) * 1000 / Math.max(1, System.currentTimeMillis() - start), heapGrowth / 1024);
+		assertThat(heapGrowth).isLessThan(maxHeapGrowth);
+	}
+
+	private void runConcurrently(final CaptureTask task) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					start.await();
+					for (int i = 0; i < CAPTURES_PER_THREAD; i++) {
+						task.capture(thread, i);
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) future.get();
+	}
+
+	private static Person deepFriend(int depth) {
+		Person person = on(Person.class);
+		for (int i = 0; i < depth; i++) person = person.getBestFriend();
+		return person;
+	}
+
+	private static String deepFriendPath(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) sb.append("bestFriend.");
+		return sb.toString();
+	}
+
+	private static int countAlive(List<WeakReference<Object>> references) {
+		int alive = 0;
+		for (WeakReference<Object> reference : references) {
+			if (reference.get() != null) alive++;
+		}
+		return alive;
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+		for (long value : values) sum += value;
+		return sum;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void forceGc() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+	}
+
+	private interface CaptureTask {
+		void capture(int thread, int i);
+	}
+
+	/**
+	 * Defines its own copy of the given class and delegates everything else to the test class loader,
+	 * so that each instance stands for a redeployed module.
+	 */
+	private static final class ChildFirstClassLoader extends ClassLoader {
+		private final String isolatedClassName;
+
+		ChildFirstClassLoader(String isolatedClassName) {
+			super(PropertyUtilsStressTest.class.getClassLoader());
+			this.isolatedClassName = isolatedClassName;
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.equals(isolatedClassName)) return super.loadClass(name, resolve);
+			Class<?> clazz = findLoadedClass(name);
+			if (clazz == null) {
+				byte[] bytes = readClassBytes(name);
+				clazz = defineClass(name, bytes, 0, bytes.length);
+			}
+			if (resolve) resolveClass(clazz);
+			return clazz;
+		}
+
+		private byte[] readClassBytes(String name) throws ClassNotFoundException {
+			InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+			if (in == null) throw new ClassNotFoundException(name);
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) out.write(buffer, 0, read);
+				return out.toByteArray();
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			} finally {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	public enum Gender {
+		MALE, FEMALE
+	}
+
+	public static class Person {
+		private String name;
+		private int age;
+		private boolean male;
+		private Gender gender;
+		private Person bestFriend;
+		private Address address;
+
+		public String getName() {
+			return name;
+		}
+
+		public int getAge() {
+			return age;
+		}
+
+		public boolean isMale() {
+			return male;
+		}
+
+		public Gender getGender() {
+			return gender;
+		}
+
+		public Person getBestFriend() {
+			return bestFriend;
+		}
+
+		public Address getAddress() {
+			return address;
+		}
+	}
+
+	public static class Address {
+		private String city;
+
+		public String getCity() {
+			return city;
+		}
+	}
+
+	public static class ChurnBean {
+		private String value;
+		private int count;
+		private char initial;
+
+		public String getValue() {
+			return value;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public char getInitial() {
+			return initial;
+		}
+	}
+}
@@ -1,8 +1,19 @@
 package ch.julien.propertyutils;
 
+import static ch.julien.propertyutils.PropertyUtils.binder;
 import static ch.julien.propertyutils.PropertyUtils.on;
 import static ch.julien.propertyutils.PropertyUtils.property;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.Test;
 
@@ -13,6 +24,259 @@ public class PropertyUtilsTest {
 		assertThat(booleanArgument.getInkvokedPropertyName()).isEqualTo("baz");
 	}
 
+	@Test
+	public void bindsRowToNestedProperties() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, "bar.baz", "count", "enabled");
+
+		Foo foo = binder.bind(new Object[] { "baz", 42L, true });
+
+		assertThat(foo.getBar().getBaz()).isEqualTo("baz");
+		assertThat(foo.getCount()).isEqualTo(42);
+		assertThat(foo.isEnabled()).isTrue();
+	}
+
+	@Test
+	public void bindsMapKeyedByArgumentPaths() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, property(on(Foo.class).getBar().getBaz()), property(on(Foo.class).getCount()));
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("bar.baz", "baz");
+		row.put("count", 7);
+		Foo foo = new Foo();
+		Bar bar = new Bar();
+		foo.setBar(bar);
+
+		binder.bind(foo, row);
+
+		assertThat(foo.getBar()).isSameAs(bar);
+		assertThat(bar.getBaz()).isEqualTo("baz");
+		assertThat(foo.getCount()).isEqualTo(7);
+	}
+
+	@Test
+	public void bindsMissingPrimitiveToDefaultValue() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, "count", "enabled", "bar.baz");
+		Foo foo = new Foo();
+		foo.setCount(3);
+		foo.setEnabled(true);
+
+		binder.bind(foo, new HashMap<String, Object>());
+		assertThat(foo.getCount()).isZero();
+		assertThat(foo.isEnabled()).isFalse();
+		assertThat(foo.getBar().getBaz()).isNull();
+
+		binder.bind(foo, new Object[] { null, true, "baz" });
+		assertThat(foo.getCount()).isZero();
+		assertThat(foo.isEnabled()).isTrue();
+		assertThat(foo.getBar().getBaz()).isEqualTo("baz");
+	}
+
+	@Test
+	public void bindsAllRows() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, "count", "bar.baz");
+		List<Object[]> rows = Arrays.asList(new Object[] { 1, "a" }, new Object[] { 2, "b" }, new Object[] { 3, "c" });
+		Foo existing = new Foo();
+		Foo[] foos = new Foo[] { null, existing };
+
+		assertThat(binder.bindAll(rows.iterator(), foos)).isEqualTo(2);
+
+		assertThat(foos[0].getCount()).isEqualTo(1);
+		assertThat(foos[0].getBar().getBaz()).isEqualTo("a");
+		assertThat(foos[1]).isSameAs(existing);
+		assertThat(existing.getCount()).isEqualTo(2);
+		assertThat(existing.getBar().getBaz()).isEqualTo("b");
+	}
+
+	@Test
+	public void bindsAllRowsAcrossExecutor() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, "count", "bar.baz");
+		List<Object[]> rows = Arrays.asList(new Object[] { 1, "a" }, new Object[] { 2, "b" }, new Object[] { 3, "c" });
+		Foo existing = new Foo();
+		Foo[] foos = new Foo[5];
+		foos[1] = existing;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			assertThat(binder.bindAll(rows.iterator(), foos, executor)).isEqualTo(3);
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(foos[i].getCount()).isEqualTo(i + 1);
+			assertThat(foos[i].getBar().getBaz()).isEqualTo(rows.get(i)[1]);
+		}
+		assertThat(foos[1]).isSameAs(existing);
+		assertThat(foos[3]).isNull();
+		assertThat(foos[4]).isNull();
+	}
+
+	@Test
+	public void awaitsAllBatchesBeforeRethrowingFailure() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, "count");
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int i = 0; i < 100; i++) rows.add(new Object[] { i });
+		rows.add(new Object[] { "wrong" });
+		Foo[] foos = new Foo[rows.size()];
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			binder.bindAll(rows.iterator(), foos, executor);
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("Unable to bind the value wrong to count");
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(foos[i].getCount()).isEqualTo(i);
+		}
+	}
+
+	@Test
+	public void rejectsBatchesOnShutDownExecutor() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+
+		try {
+			binder(Foo.class, "count").bindAll(Arrays.asList(new Object[] { 1 }).iterator(), new Foo[1], executor);
+			failBecauseExceptionWasNotThrown(RejectedExecutionException.class);
+		} catch (RejectedExecutionException e) {
+			assertThat(executor.isTerminated()).isTrue();
+		}
+	}
+
+	@Test
+	public void bindsIntermediateWithoutConstructorReturnedByGetter() {
+		PropertyUtils.Binder<Baz> binder = binder(Baz.class, "named.name");
+
+		Baz baz = binder.bind(new Object[] { "name" });
+
+		assertThat(baz.getNamed().getName()).isEqualTo("name");
+		try {
+			baz.setNamed(null);
+			binder.bind(baz, new Object[] { "name" });
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("Unable to create named: " + Named.class.getName() + " is abstract or has no public no-args constructor");
+		}
+	}
+
+	@Test
+	public void rejectsIntermediateWithoutGetterNorConstructor() {
+		try {
+			binder(Baz.class, "unnamed.name");
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("Unable to create unnamed: " + Named.class.getName() + " is abstract or has no public no-args constructor");
+		}
+	}
+
+	@Test
+	public void reportsPropertyOfWrongTypedValue() {
+		PropertyUtils.Binder<Foo> binder = binder(Foo.class, "bar.baz", "enabled", "count");
+
+		try {
+			binder.bind(new Object[] { "baz", true, "wrong" });
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("Unable to bind the value wrong to count");
+		}
+	}
+
+	@Test
+	public void rejectsTooShortRow() {
+		try {
+			binder(Foo.class, "count", "bar.baz").bind(new Object[] { 1 });
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("The row has 1 columns while 2 are bound");
+		}
+	}
+
+	@Test
+	public void rejectsPropertyBoundTwice() {
+		try {
+			binder(Foo.class, "bar.baz", "count", "bar.baz");
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("The property bar.baz is bound more than once");
+		}
+		try {
+			binder(Foo.class, "bar.baz", "bar");
+			failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+		} catch (IllegalArgumentException e) {
+			assertThat(e).hasMessage("The property bar is bound more than once");
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownProperty() {
+		binder(Foo.class, "bar.qux");
+	}
+
+	public static class Foo {
+		private Bar bar;
+		private int count;
+		private boolean enabled;
+
+		public Bar getBar() {
+			return this.bar;
+		}
+
+		public void setBar(Bar bar) {
+			this.bar = bar;
+		}
+
+		public int getCount() {
+			return this.count;
+		}
+
+		public void setCount(int count) {
+			this.count = count;
+		}
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+	}
+
+	public static class Baz {
+		private Named named = new Named("default");
+
+		public Named getNamed() {
+			return this.named;
+		}
+
+		public void setNamed(Named named) {
+			this.named = named;
+		}
+
+		public void setUnnamed(Named unnamed) {
+			this.named = unnamed;
+		}
+	}
+
+	public static class Named {
+		private String name;
+
+		public Named(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
 	public static class Bar {
 		private String baz;
 
@@ -24,4 +288,4 @@ public class PropertyUtilsTest {
 			this.baz = baz;
 		}
 	}
-}
\ No newline at end of file
+}